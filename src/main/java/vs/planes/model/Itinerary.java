@@ -0,0 +1,53 @@
+package vs.planes.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+/**
+ * Legs of a journey together with the dates they are actually flown on
+ */
+@AllArgsConstructor
+@Data
+public class Itinerary {
+    private OffsetDateTime readyTime;               // When the traveller is ready to depart
+    private List<Route> legs;
+    private List<OffsetDateTime> departureTimes;    // Departure of every leg, one per leg
+
+    public OffsetDateTime getArrivalTime(int leg) {
+        return departureTimes.get(leg).plus(legs.get(leg).getDuration());
+    }
+
+    public OffsetDateTime getFinalArrivalTime() {
+        return getArrivalTime(legs.size() - 1);
+    }
+
+    /**
+     * @return Time between arriving with the given leg and departing with the next one
+     */
+    public Duration getLayover(int leg) {
+        return Duration.between(getArrivalTime(leg), departureTimes.get(leg + 1));
+    }
+
+    public double getTotalCost() {
+        double total = 0;
+        for (Route leg : legs) {
+            total += leg.getCost();
+        }
+        return total;
+    }
+
+    /**
+     * @return Waiting for the first flight plus flight and transfer times
+     */
+    public Duration getTotalDuration() {
+        return Duration.between(readyTime, getFinalArrivalTime());
+    }
+
+    public int getTransfers() {
+        return legs.size() - 1;
+    }
+}
@@ -0,0 +1,45 @@
+package vs.planes.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.Duration;
+
+/**
+ * Restrictions every leg of an itinerary has to satisfy, checked inside the search
+ */
+@AllArgsConstructor
+@Data
+public class LegFilter {
+    public static final LegFilter NONE = new LegFilter(PlaneType.ALL, Double.POSITIVE_INFINITY, Long.MAX_VALUE);
+
+    private final int allowedPlaneTypes;  // Bitmask of PlaneType.bit()
+    private final double maxLegCost;
+    private final long maxLegMinutes;
+
+    public LegFilter excluding(PlaneType... planeTypes) {
+        int allowed = allowedPlaneTypes;
+        for (PlaneType planeType : planeTypes) {
+            allowed &= ~planeType.bit();
+        }
+        return new LegFilter(allowed, maxLegCost, maxLegMinutes);
+    }
+
+    public LegFilter excludingSmallAircraft() {
+        int allowed = allowedPlaneTypes;
+        for (PlaneType planeType : PlaneType.values()) {
+            if (planeType.isSmall()) {
+                allowed &= ~planeType.bit();
+            }
+        }
+        return new LegFilter(allowed, maxLegCost, maxLegMinutes);
+    }
+
+    public LegFilter withMaxLegCost(double cost) {
+        return new LegFilter(allowedPlaneTypes, cost, maxLegMinutes);
+    }
+
+    public LegFilter withMaxLegDuration(Duration duration) {
+        return new LegFilter(allowedPlaneTypes, maxLegCost, duration.toMinutes());
+    }
+}
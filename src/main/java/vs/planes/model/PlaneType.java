@@ -1,15 +1,34 @@
 package vs.planes.model;
 
 public enum PlaneType {
-    BOEING_737,
-    AIRBUS_A320,
-    BOEING_747,
-    AIRBUS_A380,
-    CESSNA_172,
-    PIPER_CHEROKEE,
-    BEECHCRAFT_BONANZA,
-    CIRRUS_SR22,
-    EMBRAER_PHENOM_100,
-    BOMBARDIER_GLOBAL_6000,
-    ANTONOV_AN_225_MRIYA
+    BOEING_737(false),
+    AIRBUS_A320(false),
+    BOEING_747(false),
+    AIRBUS_A380(false),
+    CESSNA_172(true),
+    PIPER_CHEROKEE(true),
+    BEECHCRAFT_BONANZA(true),
+    CIRRUS_SR22(true),
+    EMBRAER_PHENOM_100(true),
+    BOMBARDIER_GLOBAL_6000(false),
+    ANTONOV_AN_225_MRIYA(false);
+
+    public static final int ALL = (1 << values().length) - 1;
+
+    private final boolean small;  // Light aircraft and very light jets
+
+    PlaneType(boolean small) {
+        this.small = small;
+    }
+
+    public boolean isSmall() {
+        return small;
+    }
+
+    /**
+     * @return The bit of this type in a plane type bitmask
+     */
+    public int bit() {
+        return 1 << ordinal();
+    }
 }
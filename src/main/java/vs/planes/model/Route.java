@@ -9,16 +9,24 @@ import java.time.OffsetTime;
 @AllArgsConstructor
 @Data
 public class Route {
+    public static final int EVERY_DAY = 0b1111111;
+
     private Airport origin;
     private Airport destination;
     private double cost;
     private OffsetTime departureTime;
     private OffsetTime arrivalTime;
     private PlaneType planeType;
+    private int operatingDays;  // Bit 0 for Monday up to bit 6 for Sunday, in the departure's offset
+
+    public Route(Airport origin, Airport destination, double cost,
+                 OffsetTime departureTime, OffsetTime arrivalTime, PlaneType planeType) {
+        this(origin, destination, cost, departureTime, arrivalTime, planeType, EVERY_DAY);
+    }
 
     public Duration getDuration() {
         Duration duration = Duration.between(departureTime, arrivalTime);
-        // If duration is negative, it means the flight arrives the next day
+        // A single flight is shorter than a day, so a negative duration means it arrives the next day
         if (duration.isNegative()) {
             duration = duration.plus(Duration.ofHours(24));
         }
@@ -2,5 +2,6 @@ package vs.planes.model;
 
 public enum RouteCriteria {
     COST,
-    DURATION
+    DURATION,
+    PARETO   // Trade-off set over cost, duration and transfers
 }
@@ -0,0 +1,455 @@
+package vs.planes.server;
+
+import vs.planes.model.Airport;
+import vs.planes.model.Itinerary;
+import vs.planes.model.LegFilter;
+import vs.planes.model.PlaneType;
+import vs.planes.model.Route;
+import vs.planes.model.RouteCriteria;
+import vs.planes.utils.RouteFinder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * One client session of the line-based query protocol.
+ * <pre>
+ * PING                                          -&gt; PONG
+ * FIND &lt;origin&gt; &lt;destination&gt; &lt;criteria&gt; &lt;time&gt; [options] -&gt; OK &lt;n&gt; followed by n ROUTE lines, or ERR &lt;message&gt;
+ * BATCH &lt;n&gt; followed by n FIND lines             -&gt; BATCH &lt;n&gt; followed by the n FIND responses
+ * QUIT                                          -&gt; BYE, then the session ends
+ * </pre>
+ * The time is either {@code HH:mm} today or an ISO date-time such as {@code 2024-05-17T08:30+02:00}
+ * in the years 1 to 9999.
+ * Options restrict the legs a route may use: {@code EXCLUDE=CESSNA_172,SMALL} (plane types, or
+ * {@code SMALL} for all small aircraft), {@code MAXCOST=<cost per leg>} and {@code MAXDURATION=<minutes per leg>}.
+ * A ROUTE line is {@code ROUTE <totalCost> <totalMinutes> <transfers> <legs>}, where legs are
+ * separated by {@code ;} and each leg is {@code origin,destination,departure,arrival,planeType,cost}
+ * with ISO offset date-times.
+ * <p>
+ * Requests are pipelined: the reader keeps parsing and submitting queries while earlier ones
+ * are still running, and the writer sends responses strictly in request order. At most
+ * {@link #MAX_IN_FLIGHT} FIND queries, counted individually inside batches, may be submitted
+ * but not yet written, and every search needs one of the server-wide search permits while it
+ * runs. When either runs out the reader stops consuming input, so a fast client is throttled
+ * by TCP flow control instead of growing server memory or work.
+ * <p>
+ * A batch larger than {@link #MAX_BATCH} is skipped to keep the stream in sync, unless it is
+ * larger than {@link #MAX_SKIPPED_BATCH}, in which case the session ends. The session also
+ * ends on a line longer than {@link #MAX_LINE_LENGTH}, so a client cannot make the reader
+ * buffer unbounded input.
+ */
+class QueryConnection implements Runnable {
+    private static final int MAX_IN_FLIGHT = 256;
+    // A batch is answered as a whole, so it has to fit into the in-flight budget
+    private static final int MAX_BATCH = MAX_IN_FLIGHT;
+    private static final int MAX_SKIPPED_BATCH = 16 * MAX_BATCH;
+    private static final int MAX_LINE_LENGTH = 4096;
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ISO_OFFSET_DATE_TIME;
+    private static final int MIN_YEAR = 1;
+    private static final int MAX_YEAR = 9999;
+    private static final Response END = new Response(CompletableFuture.completedFuture(null), 0);
+
+    private final BufferedReader in;
+    private final Writer out;
+    private final RouteFinder routeFinder;
+    private final Map<String, Airport> airportsByCode;
+    private final ExecutorService executor;
+    private final Semaphore searchPermits;
+    private final Semaphore findPermits = new Semaphore(MAX_IN_FLIGHT);
+    private final BlockingQueue<Response> pending = new ArrayBlockingQueue<>(MAX_IN_FLIGHT);
+    private final StringBuilder lineBuffer = new StringBuilder();
+
+    /**
+     * @param searchPermits Shared by all connections, one is held by every running search
+     */
+    QueryConnection(BufferedReader in, Writer out, RouteFinder routeFinder,
+                    Map<String, Airport> airportsByCode, ExecutorService executor, Semaphore searchPermits) {
+        this.in = in;
+        this.out = out;
+        this.routeFinder = routeFinder;
+        this.airportsByCode = airportsByCode;
+        this.executor = executor;
+        this.searchPermits = searchPermits;
+    }
+
+    @Override
+    public void run() {
+        Future<?> writer = executor.submit(this::writeResponses);
+        try {
+            readRequests();
+        } catch (IOException e) {
+            // Client went away, still let the writer finish what was already accepted
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            enqueue(END);
+        }
+
+        try {
+            writer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("Response writer failed: " + e.getCause());
+        }
+    }
+
+    private void readRequests() throws IOException, InterruptedException {
+        try {
+            readCommands();
+        } catch (LineTooLongException e) {
+            pending.put(reply(error("Line longer than " + MAX_LINE_LENGTH + " characters, closing")));
+        }
+    }
+
+    private void readCommands() throws IOException, InterruptedException {
+        String line;
+        while ((line = readLine()) != null) {
+            String[] tokens = tokenize(line);
+            if (tokens.length == 0) {
+                continue;
+            }
+
+            switch (tokens[0].toUpperCase(Locale.ROOT)) {
+                case "PING":
+                    pending.put(reply("PONG\n"));
+                    break;
+                case "FIND":
+                    findPermits.acquire();
+                    pending.put(new Response(submitFind(tokens), 1));
+                    break;
+                case "BATCH":
+                    int size = parseBatchSize(tokens);
+                    if (size > MAX_SKIPPED_BATCH) {
+                        // Too large to skip, the rest of the input cannot be trusted
+                        pending.put(reply(error("Batch larger than " + MAX_SKIPPED_BATCH + ", closing")));
+                        return;
+                    }
+                    pending.put(readBatch(size));
+                    break;
+                case "QUIT":
+                    pending.put(reply("BYE\n"));
+                    return;
+                default:
+                    pending.put(reply(error("Unknown command " + tokens[0])));
+            }
+        }
+    }
+
+    private static int parseBatchSize(String[] tokens) {
+        try {
+            return tokens.length == 2 ? Integer.parseInt(tokens[1]) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private Response readBatch(int size) throws IOException, InterruptedException {
+        if (size < 0) {
+            return reply(error("Usage: BATCH <n>"));
+        }
+
+        if (size > MAX_BATCH) {
+            // Keep the stream in sync by skipping the rejected batch
+            for (int i = 0; i < size; i++) {
+                readBatchLine();
+            }
+            return reply(error("Batch larger than " + MAX_BATCH));
+        }
+
+        // Submit every query of the batch before waiting on any of them
+        @SuppressWarnings({"rawtypes", "unchecked"})
+        CompletableFuture<String>[] results = new CompletableFuture[size];
+        for (int i = 0; i < size; i++) {
+            String[] query = tokenize(readBatchLine());
+            findPermits.acquire();
+            results[i] = query.length > 0 && query[0].equalsIgnoreCase("FIND")
+                    ? submitFind(query)
+                    : CompletableFuture.completedFuture(error("Only FIND is allowed in a batch"));
+        }
+
+        return new Response(CompletableFuture.allOf(results).thenApply(ignored -> {
+            StringBuilder response = new StringBuilder("BATCH ").append(results.length).append('\n');
+            for (CompletableFuture<String> result : results) {
+                response.append(result.join());
+            }
+            return response.toString();
+        }), size);
+    }
+
+    private String readBatchLine() throws IOException {
+        String line = readLine();
+        if (line == null) {
+            throw new IOException("Input ended inside a batch");
+        }
+        return line;
+    }
+
+    /**
+     * Reads a line like {@link BufferedReader#readLine()}, but at most {@link #MAX_LINE_LENGTH} characters of it
+     * @return The line without its terminator, or null at the end of input
+     * @throws LineTooLongException If the line does not end within the limit
+     */
+    private String readLine() throws IOException {
+        lineBuffer.setLength(0);
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '\n') {
+                return lineBuffer.toString();
+            }
+            if (c == '\r') {
+                // Swallow the \n of a \r\n terminator
+                in.mark(1);
+                if (in.read() != '\n') {
+                    in.reset();
+                }
+                return lineBuffer.toString();
+            }
+            if (lineBuffer.length() == MAX_LINE_LENGTH) {
+                throw new LineTooLongException();
+            }
+            lineBuffer.append((char) c);
+        }
+        return lineBuffer.length() > 0 ? lineBuffer.toString() : null;
+    }
+
+    private CompletableFuture<String> submitFind(String[] tokens) throws InterruptedException {
+        if (tokens.length < 5) {
+            return CompletableFuture.completedFuture(
+                    error("Usage: FIND <origin> <destination> <criteria> <time> [EXCLUDE=types] [MAXCOST=x] [MAXDURATION=minutes]"));
+        }
+
+        Airport origin = airportsByCode.get(tokens[1].toUpperCase(Locale.ROOT));
+        Airport destination = airportsByCode.get(tokens[2].toUpperCase(Locale.ROOT));
+        if (origin == null || destination == null) {
+            return CompletableFuture.completedFuture(
+                    error("Unknown airport " + (origin == null ? tokens[1] : tokens[2])));
+        }
+        if (origin.equals(destination)) {
+            return CompletableFuture.completedFuture(error("Origin and destination airports must be different"));
+        }
+
+        RouteCriteria criteria;
+        OffsetDateTime departureTime;
+        try {
+            criteria = RouteCriteria.valueOf(tokens[3].toUpperCase(Locale.ROOT));
+            departureTime = parseTime(tokens[4]);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            return CompletableFuture.completedFuture(error("Invalid criteria or time"));
+        }
+
+        LegFilter filter;
+        try {
+            filter = parseFilter(tokens);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(error("Invalid option " + e.getMessage()));
+        }
+
+        searchPermits.acquire();
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return formatResults(routeFinder.findRoutes(origin, destination, criteria, departureTime, filter));
+                } catch (RuntimeException e) {
+                    // Answer this query alone, so a batch still gets one response per query
+                    return error("Query failed");
+                } finally {
+                    searchPermits.release();
+                }
+            }, executor);
+        } catch (RuntimeException e) {
+            searchPermits.release();
+            throw e;
+        }
+    }
+
+    private void writeResponses() {
+        boolean writable = true;
+        while (true) {
+            Response next;
+            try {
+                next = pending.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (next == END) {
+                break;
+            }
+
+            String response;
+            try {
+                response = next.text.join();
+            } catch (RuntimeException e) {
+                response = error("Query failed");
+            }
+
+            // After a write failure keep draining, so a reader blocked on a full queue can proceed
+            if (writable) {
+                try {
+                    out.write(response);
+                    if (pending.isEmpty()) {
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    writable = false;
+                }
+            }
+            findPermits.release(next.finds);
+        }
+
+        try {
+            out.flush();
+        } catch (IOException e) {
+            // Nothing left to tell the client
+        }
+    }
+
+    /**
+     * Queues a response even if the calling thread was interrupted, so the writer always sees it
+     */
+    private void enqueue(Response response) {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                try {
+                    pending.put(response);
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static Response reply(String text) {
+        return new Response(CompletableFuture.completedFuture(text), 0);
+    }
+
+    private static OffsetDateTime parseTime(String text) {
+        if (text.length() <= 5) {
+            return OffsetDateTime.now().with(LocalTime.parse(text, TIME_FORMATTER));
+        }
+        OffsetDateTime time = OffsetDateTime.parse(text, DATE_TIME_FORMATTER);
+        // The search looks days ahead, which would overflow near the ends of the supported range
+        if (time.getYear() < MIN_YEAR || time.getYear() > MAX_YEAR) {
+            throw new DateTimeParseException("Year out of range", text, 0);
+        }
+        return time;
+    }
+
+    /**
+     * Builds the leg filter from the options following the time of a FIND request
+     * @throws IllegalArgumentException With the offending option as message
+     */
+    private static LegFilter parseFilter(String[] tokens) {
+        LegFilter filter = LegFilter.NONE;
+        for (int i = 5; i < tokens.length; i++) {
+            int separator = tokens[i].indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException(tokens[i]);
+            }
+            String name = tokens[i].substring(0, separator).toUpperCase(Locale.ROOT);
+            String value = tokens[i].substring(separator + 1).toUpperCase(Locale.ROOT);
+            try {
+                switch (name) {
+                    case "EXCLUDE":
+                        for (String type : value.split(",")) {
+                            filter = type.equals("SMALL")
+                                    ? filter.excludingSmallAircraft()
+                                    : filter.excluding(PlaneType.valueOf(type));
+                        }
+                        break;
+                    case "MAXCOST":
+                        filter = filter.withMaxLegCost(Double.parseDouble(value));
+                        break;
+                    case "MAXDURATION":
+                        filter = filter.withMaxLegDuration(Duration.ofMinutes(Long.parseLong(value)));
+                        break;
+                    default:
+                        throw new IllegalArgumentException(tokens[i]);
+                }
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(tokens[i]);
+            }
+        }
+        return filter;
+    }
+
+    private static String formatResults(List<Itinerary> itineraries) {
+        StringBuilder response = new StringBuilder("OK ").append(itineraries.size()).append('\n');
+        for (Itinerary itinerary : itineraries) {
+            response.append("ROUTE ")
+                    .append(String.format(Locale.ROOT, "%.2f", itinerary.getTotalCost())).append(' ')
+                    .append(itinerary.getTotalDuration().toMinutes()).append(' ')
+                    .append(itinerary.getTransfers()).append(' ');
+            List<Route> legs = itinerary.getLegs();
+            for (int i = 0; i < legs.size(); i++) {
+                Route route = legs.get(i);
+                if (i > 0) {
+                    response.append(';');
+                }
+                response.append(route.getOrigin().getCode()).append(',')
+                        .append(route.getDestination().getCode()).append(',')
+                        .append(itinerary.getDepartureTimes().get(i).format(DATE_TIME_FORMATTER)).append(',')
+                        .append(itinerary.getArrivalTime(i).format(DATE_TIME_FORMATTER)).append(',')
+                        .append(route.getPlaneType()).append(',')
+                        .append(String.format(Locale.ROOT, "%.2f", route.getCost()));
+            }
+            response.append('\n');
+        }
+        return response.toString();
+    }
+
+    private static String error(String message) {
+        return "ERR " + message + '\n';
+    }
+
+    private static String[] tokenize(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+    }
+
+    private static final class LineTooLongException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        LineTooLongException() {
+            super("Line longer than " + MAX_LINE_LENGTH + " characters");
+        }
+    }
+
+    /**
+     * A queued response and the number of FIND permits it holds until it is written
+     */
+    private static final class Response {
+        final CompletableFuture<String> text;
+        final int finds;
+
+        Response(CompletableFuture<String> text, int finds) {
+            this.text = text;
+            this.finds = finds;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package vs.planes.server;
+
+import vs.planes.model.Airport;
+import vs.planes.utils.DataGenerator;
+import vs.planes.utils.RouteFinder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Headless entry point that loads the network once and answers route queries
+ * over a loopback socket or stdin, using the line protocol of {@link QueryConnection}.
+ * <p>
+ * Usage: {@code RouteQueryServer [--port N] [--stdin]}
+ */
+public class RouteQueryServer {
+    private static final int DEFAULT_PORT = 7070;
+    private static final int MAX_CONNECTIONS = 1024;
+    // Searches are CPU bound, running more at once only adds memory
+    private static final int MAX_RUNNING_SEARCHES = Runtime.getRuntime().availableProcessors();
+
+    private final RouteFinder routeFinder;
+    private final Map<String, Airport> airportsByCode = new HashMap<>();
+    private final ExecutorService executor = newThreadPerTaskExecutor();
+    private final Semaphore connectionPermits = new Semaphore(MAX_CONNECTIONS);
+    private final Semaphore searchPermits = new Semaphore(MAX_RUNNING_SEARCHES);
+
+    public RouteQueryServer(DataGenerator dataGenerator) {
+        this.routeFinder = new RouteFinder(DataGenerator.getAirportRegistry(), DataGenerator.getRoutes());
+        for (Airport airport : DataGenerator.getAirports()) {
+            airportsByCode.put(airport.getCode(), airport);
+        }
+    }
+
+    /**
+     * Accepts connections on the loopback interface until the process is stopped
+     * @param port Port to listen on
+     */
+    public void serveSocket(int port) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress())) {
+            System.err.println("Route query server listening on " + serverSocket.getLocalSocketAddress());
+            while (!serverSocket.isClosed()) {
+                // Stop accepting while at the connection limit, pending clients wait in the backlog
+                connectionPermits.acquireUninterruptibly();
+                Socket socket;
+                try {
+                    socket = serverSocket.accept();
+                } catch (IOException e) {
+                    connectionPermits.release();
+                    throw e;
+                }
+                executor.execute(() -> handleSocket(socket));
+            }
+        }
+    }
+
+    /**
+     * Serves a single session over stdin/stdout, returning when input ends or QUIT is received
+     */
+    public void serveStdin() {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        newConnection(in, out).run();
+    }
+
+    private void handleSocket(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            BufferedWriter out = new BufferedWriter(
+                    new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            newConnection(in, out).run();
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e.getMessage());
+        } finally {
+            connectionPermits.release();
+        }
+    }
+
+    private QueryConnection newConnection(BufferedReader in, BufferedWriter out) {
+        return new QueryConnection(in, out, routeFinder, airportsByCode, executor, searchPermits);
+    }
+
+    /**
+     * Uses a virtual thread per task when the runtime has them enabled (Java 21+),
+     * otherwise falls back to pooled platform threads
+     */
+    private static ExecutorService newThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private static void usage() {
+        System.err.println("Usage: RouteQueryServer [--port N] [--stdin]");
+        System.exit(2);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        boolean stdin = false;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--stdin":
+                    stdin = true;
+                    break;
+                case "--port":
+                    try {
+                        port = Integer.parseInt(args[++i]);
+                    } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                        usage();
+                    }
+                    break;
+                default:
+                    usage();
+            }
+        }
+
+        RouteQueryServer server = new RouteQueryServer(new DataGenerator());
+        if (stdin) {
+            server.serveStdin();
+            System.exit(0);
+        } else {
+            server.serveSocket(port);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package vs.planes.ui;
+
+import vs.planes.model.Route;
+import vs.planes.utils.AirportRegistry;
+import vs.planes.utils.LongIntHashMap;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Screen-space accumulation buffer for the whole-network overlay.
+ * Legs are first aggregated into weighted airport pairs, then every pair
+ * is rasterized once as a polyline whose weight is added to the pixels it
+ * crosses. The finished raster is colorized into a single ARGB image.
+ */
+final class DensityRaster {
+    private static final int[] PALETTE = createPalette();
+
+    private final int width;
+    private final int height;
+    private final float[] density;
+    private float maxDensity;
+
+    DensityRaster(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.density = new float[width * height];
+    }
+
+    /**
+     * Adds a quadratic curve, sampled with a step count that follows its on-screen length
+     */
+    void addCurve(double x1, double y1, double controlX, double controlY, double x2, double y2, float weight) {
+        // Skip curves whose bounding box misses the raster entirely
+        double minX = Math.min(Math.min(x1, x2), controlX);
+        double maxX = Math.max(Math.max(x1, x2), controlX);
+        double minY = Math.min(Math.min(y1, y2), controlY);
+        double maxY = Math.max(Math.max(y1, y2), controlY);
+        if (maxX < 0 || maxY < 0 || minX >= width || minY >= height) {
+            return;
+        }
+
+        double length = Math.hypot(controlX - x1, controlY - y1) + Math.hypot(x2 - controlX, y2 - controlY);
+        int steps = (int) Math.max(2, Math.min(256, length / 4));
+
+        double prevX = x1;
+        double prevY = y1;
+        for (int i = 1; i <= steps; i++) {
+            double t = (double) i / steps;
+            double u = 1 - t;
+            double x = u * u * x1 + 2 * u * t * controlX + t * t * x2;
+            double y = u * u * y1 + 2 * u * t * controlY + t * t * y2;
+            addLine(prevX, prevY, x, y, weight);
+            prevX = x;
+            prevY = y;
+        }
+    }
+
+    private void addLine(double x0, double y0, double x1, double y1, float weight) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        int n = (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)));
+        if (n == 0) {
+            return;
+        }
+
+        // The end point is left out so consecutive segments don't count shared pixels twice
+        for (int i = 0; i < n; i++) {
+            int x = (int) (x0 + dx * i / n);
+            int y = (int) (y0 + dy * i / n);
+            if (x < 0 || y < 0 || x >= width || y >= height) {
+                continue;
+            }
+            int index = y * width + x;
+            float value = density[index] + weight;
+            density[index] = value;
+            if (value > maxDensity) {
+                maxDensity = value;
+            }
+        }
+    }
+
+    BufferedImage toImage() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        if (maxDensity <= 0) {
+            return image;
+        }
+
+        // Log scale so that a few hub corridors don't wash out the rest of the network
+        int[] pixels = new int[density.length];
+        double scale = (PALETTE.length - 1) / Math.log1p(maxDensity);
+        for (int i = 0; i < density.length; i++) {
+            float value = density[i];
+            if (value > 0) {
+                pixels[i] = PALETTE[(int) (Math.log1p(value) * scale)];
+            }
+        }
+        image.setRGB(0, 0, width, height, pixels, 0, width);
+        return image;
+    }
+
+    private static int[] createPalette() {
+        // Translucent yellow for sparse traffic fading into opaque red for the densest corridors
+        int[] palette = new int[256];
+        for (int i = 0; i < palette.length; i++) {
+            double t = i / 255.0;
+            int alpha = (int) (90 + 165 * t);
+            int green = (int) (230 * (1 - t));
+            int blue = (int) (60 * (1 - t));
+            palette[i] = (alpha << 24) | (255 << 16) | (green << 8) | blue;
+        }
+        return palette;
+    }
+
+    /**
+     * Collapses legs into undirected airport pairs weighted by leg count, heaviest first.
+     * Both directions of a pair are drawn as the same curve, so they share one entry.
+     * @param hub Id of the only origin to include, or -1 for all legs
+     */
+    static NetworkPairs aggregate(List<Route> legs, AirportRegistry airports, int hub) {
+        LongIntHashMap counts = new LongIntHashMap();
+        for (Route leg : legs) {
+            int from = airports.idOf(leg.getOrigin());
+            if (from < 0 || (hub >= 0 && from != hub)) {
+                continue;
+            }
+            int to = airports.idOf(leg.getDestination());
+            if (to < 0) {
+                continue;
+            }
+            int low = Math.min(from, to);
+            int high = Math.max(from, to);
+            counts.addTo(((long) low << 32) | high, 1);
+        }
+
+        // Pack count and pair number to sort by descending weight on primitives
+        long[] pairKeys = new long[counts.size()];
+        long[] order = new long[counts.size()];
+        int[] size = {0};
+        counts.forEach((key, count) -> {
+            pairKeys[size[0]] = key;
+            order[size[0]] = ((long) (Integer.MAX_VALUE - count) << 32) | size[0];
+            size[0]++;
+        });
+        Arrays.sort(order);
+
+        int[] first = new int[order.length];
+        int[] second = new int[order.length];
+        int[] weight = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            long key = pairKeys[(int) order[i]];
+            first[i] = (int) (key >>> 32);
+            second[i] = (int) key;
+            weight[i] = Integer.MAX_VALUE - (int) (order[i] >>> 32);
+        }
+        return new NetworkPairs(first, second, weight);
+    }
+
+    static final class NetworkPairs {
+        final int[] first;
+        final int[] second;
+        final int[] weight;
+
+        NetworkPairs(int[] first, int[] second, int[] weight) {
+            this.first = first;
+            this.second = second;
+            this.weight = weight;
+        }
+
+        int size() {
+            return weight.length;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package vs.planes.ui;
+
+import vs.planes.model.Itinerary;
+import vs.planes.model.Route;
+import vs.planes.model.RouteCriteria;
+
+import javax.swing.table.AbstractTableModel;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Table model backed by a precomputed summary of every itinerary.
+ * Totals are computed once when results are set, cell text is formatted
+ * lazily (JTable only asks for visible rows) and cached, and sorting only
+ * permutes an index array using primitive keys.
+ */
+public class ItineraryTableModel extends AbstractTableModel {
+    private static final String[] COLUMN_NAMES = {"Route", "Total Cost", "Total Duration", "Transfers"};
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HH:mm");
+    private static final DateTimeFormatter DAY_TIME_FORMATTER = DateTimeFormatter.ofPattern("EEE dd.MM HH:mm");
+
+    private List<Itinerary> itineraries = Collections.emptyList();
+    private double[] totalCosts = new double[0];
+    private long[] totalMinutes = new long[0];
+    private int[] transfers = new int[0];
+
+    // View row -> itinerary index
+    private int[] order = new int[0];
+    // Formatted cells, indexed by itinerary index and column
+    private String[][] cellCache = new String[0][];
+
+    public void setResults(List<Itinerary> itineraries) {
+        this.itineraries = itineraries == null ? Collections.emptyList() : itineraries;
+        int size = this.itineraries.size();
+
+        totalCosts = new double[size];
+        totalMinutes = new long[size];
+        transfers = new int[size];
+        order = new int[size];
+        cellCache = new String[size][];
+
+        for (int i = 0; i < size; i++) {
+            Itinerary itinerary = this.itineraries.get(i);
+            totalCosts[i] = itinerary.getTotalCost();
+            totalMinutes[i] = itinerary.getTotalDuration().toMinutes();
+            transfers[i] = itinerary.getTransfers();
+            order[i] = i;
+        }
+
+        fireTableDataChanged();
+    }
+
+    public void sortBy(RouteCriteria criteria) {
+        if (order.length < 2) {
+            return;
+        }
+
+        // Pack the key and the itinerary index into one long so the sort runs on primitives
+        int indexBits = 32 - Integer.numberOfLeadingZeros(order.length);
+        long indexMask = (1L << indexBits) - 1;
+        long[] keys = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            long key = criteria == RouteCriteria.COST
+                    ? Math.round(totalCosts[i] * 100)
+                    : totalMinutes[i];
+            keys[i] = (key << indexBits) | i;
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < keys.length; i++) {
+            order[i] = (int) (keys[i] & indexMask);
+        }
+
+        fireTableDataChanged();
+    }
+
+    public Itinerary getItinerary(int row) {
+        return itineraries.get(order[row]);
+    }
+
+    @Override
+    public int getRowCount() {
+        return order.length;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int index = order[row];
+        if (column == 3) {
+            return transfers[index];
+        }
+
+        String[] cells = cellCache[index];
+        if (cells == null) {
+            cells = new String[3];
+            cellCache[index] = cells;
+        }
+        if (cells[column] == null) {
+            cells[column] = formatCell(index, column);
+        }
+        return cells[column];
+    }
+
+    private String formatCell(int index, int column) {
+        switch (column) {
+            case 0:
+                return formatItinerary(itineraries.get(index));
+            case 1:
+                return String.format("%.2f", totalCosts[index]);
+            default:
+                return formatDuration(Duration.ofMinutes(totalMinutes[index]));
+        }
+    }
+
+    private static String formatItinerary(Itinerary itinerary) {
+        List<Route> route = itinerary.getLegs();
+        StringBuilder routeDesc = new StringBuilder("<html>");
+        for (int i = 0; i < route.size(); i++) {
+            Route segment = route.get(i);
+            routeDesc.append(segment.getOrigin().getCode())
+                    .append(" (")
+                    .append(formatTime(itinerary.getDepartureTimes().get(i), itinerary.getReadyTime()))
+                    .append(") → ")
+                    .append(segment.getDestination().getCode())
+                    .append(" (")
+                    .append(formatTime(itinerary.getArrivalTime(i), itinerary.getReadyTime()))
+                    .append(")")
+                    .append("<br>")
+                    .append("Flight duration: ")
+                    .append(formatDuration(segment.getDuration()))
+                    .append("<br>")
+                    .append("Plane type: ")
+                    .append(segment.getPlaneType())
+                    .append("<br>")
+                    .append("Cost: ")
+                    .append(String.format("%.2f", segment.getCost()));
+
+            if (i < route.size() - 1) {
+                routeDesc.append("<br>Layover: ")
+                        .append(formatDuration(itinerary.getLayover(i)))
+                        .append("<br>---<br>");
+            }
+        }
+        routeDesc.append("</html>");
+        return routeDesc.toString();
+    }
+
+    private static String formatTime(OffsetDateTime time, OffsetDateTime readyTime) {
+        // Spell out the date once the itinerary leaves the day the search started on
+        return time.toLocalDate().equals(readyTime.toLocalDate())
+                ? time.format(TIME_FORMATTER)
+                : time.format(DAY_TIME_FORMATTER);
+    }
+
+    private static String formatDuration(Duration duration) {
+        long hours = duration.toHours();
+        long minutes = duration.toMinutesPart();
+        return String.format("%dh %dm", hours, minutes);
+    }
+}
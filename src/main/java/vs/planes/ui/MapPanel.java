@@ -2,27 +2,133 @@ package vs.planes.ui;
 
 import vs.planes.model.Airport;
 import vs.planes.model.Route;
+import vs.planes.utils.AirportRegistry;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.geom.AffineTransform;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.QuadCurve2D;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 public class MapPanel extends JPanel {
+    private static final Color AIRPORT_COLOR = new Color(100, 200, 200, 180);
+    private static final Color HIGHLIGHT_COLOR = new Color(255, 100, 100);
+    private static final Color ROUTE_START_COLOR = new Color(0, 150, 255, 180);
+    private static final Color ROUTE_END_COLOR = new Color(0, 0, 255, 180);
+    private static final Font LABEL_FONT = new Font("Arial", Font.BOLD, 12);
+    private static final Stroke ROUTE_STROKE = new BasicStroke(2f);
+    private static final int AIRPORT_SIZE = 6;
+    private static final int HIGHLIGHT_SIZE = 8;
+    private static final double MAX_ZOOM = 64;
+    private static final double ZOOM_STEP = 1.25;
+    private static final int DENSITY_REBUILD_DELAY_MS = 120;
+    private static final long DENSITY_PUBLISH_INTERVAL_NS = 100_000_000L;
+
     private BufferedImage mapImage;
-    private List<Route> selectedRoute;
     private final int WIDTH = 600;
     private final int HEIGHT = 600;
-    private final List<Airport> airports;
-
-    public MapPanel(List<Airport> airports) {
+    private final AirportRegistry airports;
+
+    // Projected airport positions at zoom 1, and their pixel positions in the current view,
+    // indexed by airport id
+    private final double[] airportWorldX;
+    private final double[] airportWorldY;
+    private final int[] airportX;
+    private final int[] airportY;
+
+    // Current view: screen = world * zoom - offset
+    private double zoom = 1;
+    private double offsetX;
+    private double offsetY;
+    private Point dragStart;
+
+    // Scaled map with all airport dots, rendered once per view and graphics configuration
+    private BufferedImage baseLayer;
+    private GraphicsConfiguration baseLayerConfig;
+
+    // Selected route overlay, rebuilt only when the selection or the view changes
+    private List<Route> selectedRoute;
+    private final List<RouteSegment> routeSegments = new ArrayList<>();
+    private int[] highlightedAirports = new int[0];
+
+    // Whole-network density overlay, rasterized in the background for the current view
+    private List<Route> networkRoutes;
+    private CompletableFuture<DensityRaster.NetworkPairs> networkPairs;
+    private DensityWorker densityWorker;
+    private BufferedImage densityImage;
+    private double densityZoom;
+    private double densityOffsetX;
+    private double densityOffsetY;
+    private final Timer densityRebuildTimer;
+
+    public MapPanel(AirportRegistry airports) {
         this.airports = airports;
+        this.airportWorldX = new double[airports.size()];
+        this.airportWorldY = new double[airports.size()];
+        this.airportX = new int[airports.size()];
+        this.airportY = new int[airports.size()];
+        for (int i = 0; i < airports.size(); i++) {
+            Airport airport = airports.get(i);
+            airportWorldX[i] = longitudeToWorldX(airport.getLongitude());
+            airportWorldY[i] = latitudeToWorldY(airport.getLatitude());
+        }
+        projectAirports();
         loadMapImage();
         setPreferredSize(new Dimension(WIDTH, HEIGHT));
+
+        densityRebuildTimer = new Timer(DENSITY_REBUILD_DELAY_MS, e -> startDensityWorker());
+        densityRebuildTimer.setRepeats(false);
+
+        MouseAdapter navigation = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragStart != null) {
+                    setView(zoom, offsetX - (e.getX() - dragStart.x), offsetY - (e.getY() - dragStart.y));
+                    dragStart = e.getPoint();
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragStart = null;
+            }
+
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    resetView();
+                }
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                double newZoom = e.getWheelRotation() < 0 ? zoom * ZOOM_STEP : zoom / ZOOM_STEP;
+                newZoom = Math.max(1, Math.min(MAX_ZOOM, newZoom));
+                // Keep the point under the cursor fixed
+                double worldX = (e.getX() + offsetX) / zoom;
+                double worldY = (e.getY() + offsetY) / zoom;
+                setView(newZoom, worldX * newZoom - e.getX(), worldY * newZoom - e.getY());
+            }
+        };
+        addMouseListener(navigation);
+        addMouseMotionListener(navigation);
+        addMouseWheelListener(navigation);
     }
 
     private void loadMapImage() {
@@ -41,135 +147,311 @@ public class MapPanel extends JPanel {
 
     public void setSelectedRoute(List<Route> route) {
         this.selectedRoute = route;
+        buildRouteOverlay();
         repaint();
     }
 
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        Graphics2D g2 = (Graphics2D) g;
-        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    /**
+     * Shows the aggregated traffic density of the given legs, or hides the overlay when null
+     */
+    public void setNetworkRoutes(List<Route> routes) {
+        setNetworkRoutes(routes, null);
+    }
 
-        // Draw map
-        g2.drawImage(mapImage, 0, 0, WIDTH, HEIGHT, null);
+    /**
+     * Shows the aggregated traffic density of the given legs departing from the hub,
+     * or of all of them when the hub is null
+     */
+    public void setNetworkRoutes(List<Route> routes, Airport hub) {
+        if (networkPairs != null) {
+            networkPairs.cancel(false);
+        }
+        // Aggregation runs once per leg set and is shared by every view's rasterization
+        int hubId = hub == null ? -1 : indexOf(hub);
+        this.networkRoutes = routes;
+        this.networkPairs = routes == null ? null
+                : CompletableFuture.supplyAsync(() -> DensityRaster.aggregate(routes, airports, hubId));
+        this.densityImage = null;
+        densityRebuildTimer.stop();
+        startDensityWorker();
+        repaint();
+    }
+
+    public void resetView() {
+        setView(1, 0, 0);
+    }
 
-        // Draw all airports
-        for (Airport airport : airports) {
-            Point p = convertCoordinatesToPixels(airport.getLatitude(), airport.getLongitude());
-            drawAirport(g2, p, airport, false);
+    private void setView(double newZoom, double newOffsetX, double newOffsetY) {
+        // Keep the map covering the whole panel
+        newOffsetX = Math.max(0, Math.min(WIDTH * newZoom - WIDTH, newOffsetX));
+        newOffsetY = Math.max(0, Math.min(HEIGHT * newZoom - HEIGHT, newOffsetY));
+        if (newZoom == zoom && newOffsetX == offsetX && newOffsetY == offsetY) {
+            return;
         }
 
-        // Draw selected route
-        if (selectedRoute != null && !selectedRoute.isEmpty()) {
-            g2.setStroke(new BasicStroke(2f));
-
-            // Draw route lines
-            for (int i = 0; i < selectedRoute.size(); i++) {
-                Route route = selectedRoute.get(i);
-                Point p1 = convertCoordinatesToPixels(
-                        route.getOrigin().getLatitude(),
-                        route.getOrigin().getLongitude()
-                );
-                Point p2 = convertCoordinatesToPixels(
-                        route.getDestination().getLatitude(),
-                        route.getDestination().getLongitude()
-                );
-
-                // Create gradient for route line
-                GradientPaint gradient = new GradientPaint(
-                        p1.x, p1.y, new Color(0, 150, 255, 180),
-                        p2.x, p2.y, new Color(0, 0, 255, 180)
-                );
-                g2.setPaint(gradient);
-
-                // Draw curved line
-                drawCurvedLine(g2, p1, p2);
-            }
+        zoom = newZoom;
+        offsetX = newOffsetX;
+        offsetY = newOffsetY;
 
-            // Highlight airports in the route
-            for (Route route : selectedRoute) {
-                Point p1 = convertCoordinatesToPixels(
-                        route.getOrigin().getLatitude(),
-                        route.getOrigin().getLongitude()
-                );
-                Point p2 = convertCoordinatesToPixels(
-                        route.getDestination().getLatitude(),
-                        route.getDestination().getLongitude()
-                );
-
-                drawAirport(g2, p1, route.getOrigin(), true);
-                drawAirport(g2, p2, route.getDestination(), true);
-            }
+        projectAirports();
+        baseLayer = null;
+        buildRouteOverlay();
+        if (networkRoutes != null) {
+            // The stale raster is stretched to the new view until the rebuild settles
+            densityRebuildTimer.restart();
         }
+        repaint();
     }
 
-    private void drawAirport(Graphics2D g2, Point p, Airport airport, boolean highlighted) {
-        int size = highlighted ? 8 : 6;
+    private void projectAirports() {
+        for (int i = 0; i < airportX.length; i++) {
+            airportX[i] = (int) (airportWorldX[i] * zoom - offsetX);
+            airportY[i] = (int) (airportWorldY[i] * zoom - offsetY);
+        }
+    }
 
-        if (highlighted) {
-            g2.setColor(new Color(255, 100, 100));
-            g2.fill(new Ellipse2D.Double(p.x - size, p.y - size, size * 2, size * 2));
-        } else {
-            g2.setColor(new Color(100, 200, 200, 180));
-            g2.fill(new Ellipse2D.Double(p.x - size / 2, p.y - size / 2, size, size));
+    private void buildRouteOverlay() {
+        routeSegments.clear();
+        highlightedAirports = new int[0];
+
+        if (selectedRoute == null || selectedRoute.isEmpty()) {
+            return;
         }
 
-        // Draw airport code for highlighted airports
-        if (highlighted) {
-            g2.setColor(Color.WHITE);
-            g2.setFont(new Font("Arial", Font.BOLD, 12));
-            g2.drawString(airport.getCode(), p.x + 10, p.y + 4);
+        highlightedAirports = new int[selectedRoute.size() * 2];
+        for (int i = 0; i < selectedRoute.size(); i++) {
+            Route leg = selectedRoute.get(i);
+            int from = indexOf(leg.getOrigin());
+            int to = indexOf(leg.getDestination());
+            routeSegments.add(new RouteSegment(
+                    airportX[from], airportY[from],
+                    airportX[to], airportY[to]
+            ));
+            highlightedAirports[i * 2] = from;
+            highlightedAirports[i * 2 + 1] = to;
         }
     }
 
-    private void drawCurvedLine(Graphics2D g2, Point p1, Point p2) {
-        // Calculate control point for quadratic curve
-        int controlX = (p1.x + p2.x) / 2;
-        int controlY = Math.min(p1.y, p2.y) - 30; // Curve upward
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        Graphics2D g2 = (Graphics2D) g;
+
+        // Draw cached map and airports
+        g2.drawImage(getBaseLayer(), 0, 0, null);
+
+        // Draw network density
+        if (densityImage != null) {
+            if (densityZoom == zoom && densityOffsetX == offsetX && densityOffsetY == offsetY) {
+                g2.drawImage(densityImage, 0, 0, null);
+            } else {
+                AffineTransform toCurrentView = new AffineTransform();
+                toCurrentView.translate(-offsetX, -offsetY);
+                toCurrentView.scale(zoom / densityZoom, zoom / densityZoom);
+                toCurrentView.translate(densityOffsetX, densityOffsetY);
+                g2.drawImage(densityImage, toCurrentView, null);
+            }
+        }
 
-        // Draw curved line
-        g2.draw(new QuadCurve2D.Float(p1.x, p1.y, controlX, controlY, p2.x, p2.y));
+        // Draw selected route
+        if (routeSegments.isEmpty()) {
+            return;
+        }
+
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setStroke(ROUTE_STROKE);
+        for (RouteSegment segment : routeSegments) {
+            g2.setPaint(segment.gradient);
+            g2.draw(segment.curve);
+            g2.fillPolygon(segment.arrowX, segment.arrowY, 3);
+        }
 
-        // Draw direction arrow
-        drawArrow(g2, p1, p2);
+        // Highlight airports in the route
+        g2.setFont(LABEL_FONT);
+        for (int index : highlightedAirports) {
+            int x = airportX[index];
+            int y = airportY[index];
+            g2.setColor(HIGHLIGHT_COLOR);
+            g2.fillOval(x - HIGHLIGHT_SIZE, y - HIGHLIGHT_SIZE, HIGHLIGHT_SIZE * 2, HIGHLIGHT_SIZE * 2);
+            g2.setColor(Color.WHITE);
+            g2.drawString(airports.get(index).getCode(), x + 10, y + 4);
+        }
     }
 
-    private void drawArrow(Graphics2D g2, Point start, Point end) {
-        double angle = Math.atan2(end.y - start.y, end.x - start.x);
-        int arrowLength = 10;
-        int arrowAngle = 25;
+    private BufferedImage getBaseLayer() {
+        GraphicsConfiguration config = getGraphicsConfiguration();
+        if (baseLayer != null && config == baseLayerConfig) {
+            return baseLayer;
+        }
 
-        // Calculate arrow points
-        Point midPoint = new Point(
-                (start.x + end.x) / 2,
-                (start.y + end.y) / 2
-        );
+        // A compatible image matches the screen format, so blitting it stays on the fast path
+        baseLayer = config != null
+                ? config.createCompatibleImage(WIDTH, HEIGHT, Transparency.OPAQUE)
+                : new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        baseLayerConfig = config;
 
-        int[] xPoints = new int[3];
-        int[] yPoints = new int[3];
+        Graphics2D g2 = baseLayer.createGraphics();
+        g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2.drawImage(mapImage,
+                (int) -offsetX, (int) -offsetY,
+                (int) (WIDTH * zoom), (int) (HEIGHT * zoom), null);
 
-        xPoints[0] = midPoint.x + (int) (arrowLength * Math.cos(angle));
-        yPoints[0] = midPoint.y + (int) (arrowLength * Math.sin(angle));
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setColor(AIRPORT_COLOR);
+        Ellipse2D.Double dot = new Ellipse2D.Double(0, 0, AIRPORT_SIZE, AIRPORT_SIZE);
+        for (int i = 0; i < airportX.length; i++) {
+            if (airportX[i] < -AIRPORT_SIZE || airportY[i] < -AIRPORT_SIZE
+                    || airportX[i] > WIDTH + AIRPORT_SIZE || airportY[i] > HEIGHT + AIRPORT_SIZE) {
+                continue;
+            }
+            dot.x = airportX[i] - AIRPORT_SIZE / 2;
+            dot.y = airportY[i] - AIRPORT_SIZE / 2;
+            g2.fill(dot);
+        }
+        g2.dispose();
+
+        return baseLayer;
+    }
 
-        xPoints[1] = midPoint.x + (int) (arrowLength * Math.cos(angle - Math.toRadians(arrowAngle)));
-        yPoints[1] = midPoint.y + (int) (arrowLength * Math.sin(angle - Math.toRadians(arrowAngle)));
+    private void startDensityWorker() {
+        if (densityWorker != null) {
+            densityWorker.cancel(false);
+            densityWorker = null;
+        }
+        if (networkRoutes != null) {
+            densityWorker = new DensityWorker(networkPairs, zoom, offsetX, offsetY);
+            densityWorker.execute();
+        }
+    }
 
-        xPoints[2] = midPoint.x + (int) (arrowLength * Math.cos(angle + Math.toRadians(arrowAngle)));
-        yPoints[2] = midPoint.y + (int) (arrowLength * Math.sin(angle + Math.toRadians(arrowAngle)));
+    private int indexOf(Airport airport) {
+        int index = airports.idOf(airport);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown airport: " + airport.getCode());
+        }
+        return index;
+    }
 
-        g2.fillPolygon(xPoints, yPoints, 3);
+    private double longitudeToWorldX(double lon) {
+        return (lon + 180) * (WIDTH / 360.0);
     }
 
-    private Point convertCoordinatesToPixels(double lat, double lon) {
+    private double latitudeToWorldY(double lat) {
         // Mercator projection compensation for latitude
         double latRad = Math.toRadians(lat);
         double mercatorY = Math.log(Math.tan((Math.PI / 4) + (latRad / 2)));
+        return (HEIGHT / 2) - (HEIGHT * mercatorY / (2 * Math.PI));
+    }
+
+    /**
+     * Rasterizes the aggregated network for one view, publishing partial images
+     * so the overlay fills in progressively, heaviest corridors first
+     */
+    private class DensityWorker extends SwingWorker<Void, BufferedImage> {
+        private final CompletableFuture<DensityRaster.NetworkPairs> pairsFuture;
+        private final double viewZoom;
+        private final double viewOffsetX;
+        private final double viewOffsetY;
+
+        DensityWorker(CompletableFuture<DensityRaster.NetworkPairs> pairsFuture,
+                      double viewZoom, double viewOffsetX, double viewOffsetY) {
+            this.pairsFuture = pairsFuture;
+            this.viewZoom = viewZoom;
+            this.viewOffsetX = viewOffsetX;
+            this.viewOffsetY = viewOffsetY;
+        }
+
+        @Override
+        protected Void doInBackground() {
+            DensityRaster.NetworkPairs pairs = pairsFuture.join();
+
+            DensityRaster raster = new DensityRaster(WIDTH, HEIGHT);
+            long lastPublish = System.nanoTime();
+            for (int i = 0; i < pairs.size(); i++) {
+                if ((i & 1023) == 0 && isCancelled()) {
+                    return null;
+                }
+
+                double x1 = airportWorldX[pairs.first[i]] * viewZoom - viewOffsetX;
+                double y1 = airportWorldY[pairs.first[i]] * viewZoom - viewOffsetY;
+                double x2 = airportWorldX[pairs.second[i]] * viewZoom - viewOffsetX;
+                double y2 = airportWorldY[pairs.second[i]] * viewZoom - viewOffsetY;
+                raster.addCurve(x1, y1, (x1 + x2) / 2, Math.min(y1, y2) - 30, x2, y2, pairs.weight[i]);
+
+                long now = System.nanoTime();
+                if (now - lastPublish > DENSITY_PUBLISH_INTERVAL_NS) {
+                    publish(raster.toImage());
+                    lastPublish = now;
+                }
+            }
+            publish(raster.toImage());
+            return null;
+        }
 
-        // Calculate the pixel coordinates
-        int x = (int) ((lon + 180) * (WIDTH / 360.0));
-        int y = (int) ((HEIGHT / 2) - (HEIGHT * mercatorY / (2 * Math.PI)));
+        @Override
+        protected void process(List<BufferedImage> images) {
+            if (densityWorker != this || isCancelled()) {
+                return;
+            }
+            densityImage = images.get(images.size() - 1);
+            densityZoom = viewZoom;
+            densityOffsetX = viewOffsetX;
+            densityOffsetY = viewOffsetY;
+            repaint();
+        }
 
-        return new Point(x, y);
+        @Override
+        protected void done() {
+            if (densityWorker != this || isCancelled()) {
+                return;
+            }
+            try {
+                get();
+            } catch (InterruptedException | CancellationException e) {
+                // Replaced by a newer worker
+            } catch (ExecutionException e) {
+                densityImage = null;
+                repaint();
+                JOptionPane.showMessageDialog(MapPanel.this,
+                        "Could not draw the network overlay: " + e.getCause(),
+                        "Network Overlay",
+                        JOptionPane.ERROR_MESSAGE);
+            }
+        }
     }
 
+    /**
+     * Precomputed curve, gradient and direction arrow of one route leg
+     */
+    private static class RouteSegment {
+        private static final int ARROW_LENGTH = 10;
+        private static final double ARROW_ANGLE = Math.toRadians(25);
+
+        final QuadCurve2D curve;
+        final GradientPaint gradient;
+        final int[] arrowX = new int[3];
+        final int[] arrowY = new int[3];
+
+        RouteSegment(int x1, int y1, int x2, int y2) {
+            // Calculate control point for quadratic curve
+            int controlX = (x1 + x2) / 2;
+            int controlY = Math.min(y1, y2) - 30; // Curve upward
+            curve = new QuadCurve2D.Float(x1, y1, controlX, controlY, x2, y2);
+            gradient = new GradientPaint(x1, y1, ROUTE_START_COLOR, x2, y2, ROUTE_END_COLOR);
+
+            // Direction arrow at the midpoint of the chord
+            double angle = Math.atan2(y2 - y1, x2 - x1);
+            int midX = (x1 + x2) / 2;
+            int midY = (y1 + y2) / 2;
+
+            arrowX[0] = midX + (int) (ARROW_LENGTH * Math.cos(angle));
+            arrowY[0] = midY + (int) (ARROW_LENGTH * Math.sin(angle));
+
+            arrowX[1] = midX + (int) (ARROW_LENGTH * Math.cos(angle - ARROW_ANGLE));
+            arrowY[1] = midY + (int) (ARROW_LENGTH * Math.sin(angle - ARROW_ANGLE));
+
+            arrowX[2] = midX + (int) (ARROW_LENGTH * Math.cos(angle + ARROW_ANGLE));
+            arrowY[2] = midY + (int) (ARROW_LENGTH * Math.sin(angle + ARROW_ANGLE));
+        }
+    }
 }
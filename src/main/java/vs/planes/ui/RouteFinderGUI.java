@@ -1,33 +1,31 @@
 package vs.planes.ui;
 
 import vs.planes.model.Airport;
-import vs.planes.model.Route;
+import vs.planes.model.Itinerary;
+import vs.planes.model.LegFilter;
 import vs.planes.model.RouteCriteria;
 import vs.planes.utils.DataGenerator;
 import vs.planes.utils.RouteFinder;
 
 import javax.swing.*;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 import java.awt.*;
-import java.time.Duration;
 import java.time.OffsetDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
-import java.util.Vector;
 
 public class RouteFinderGUI extends JFrame {
     private final DataGenerator dataGenerator;
+    private final RouteFinder routeFinder;
     private final JComboBox<Airport> originAirportCombo;
     private final JComboBox<Airport> destAirportCombo;
     private final JComboBox<RouteCriteria> criteriaCombo;
     private final JSpinner timeSpinner;
     private final JTable resultsTable;
-    private final DefaultTableModel tableModel;
-    private List<List<Route>> currentResults;
+    private final ItineraryTableModel tableModel;
     private final MapPanel mapPanel;
-
-    private OffsetDateTime departureTime;
+    private final JToggleButton showNetworkButton;
+    private final JToggleButton showHubButton;
+    private final JCheckBox excludeSmallAircraftBox;
 
     public RouteFinderGUI() {
         setTitle("Route Finder");
@@ -41,9 +39,10 @@ public class RouteFinderGUI extends JFrame {
 
         // Initialize data
         dataGenerator = new DataGenerator();
+        routeFinder = new RouteFinder(dataGenerator.getAirportRegistry(), dataGenerator.getRoutes());
 
         // Create map panel
-        mapPanel = new MapPanel(dataGenerator.getAirports());
+        mapPanel = new MapPanel(dataGenerator.getAirportRegistry());
         mapPanel.setBackground(fairPink);
 
         // Create panels
@@ -66,15 +65,13 @@ public class RouteFinderGUI extends JFrame {
         JButton findRoutesButton = new JButton("Find Routes");
         JButton sortByCostButton = new JButton("Sort by Cost");
         JButton sortByDurationButton = new JButton("Sort by Duration");
+        showNetworkButton = new JToggleButton("Show Network");
+        showHubButton = new JToggleButton("Show Hub Traffic");
+        excludeSmallAircraftBox = new JCheckBox("Exclude small aircraft");
+        excludeSmallAircraftBox.setBackground(fairPink);
 
         // Create table
-        String[] columnNames = {"Route", "Total Cost", "Total Duration", "Transfers"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        tableModel = new ItineraryTableModel();
         resultsTable = new JTable(tableModel);
         resultsTable.setDefaultRenderer(Object.class, new MultiLineCellRenderer());
         resultsTable.setRowHeight(300);
@@ -89,8 +86,8 @@ public class RouteFinderGUI extends JFrame {
         resultsTable.getSelectionModel().addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
                 int selectedRow = resultsTable.getSelectedRow();
-                if (selectedRow >= 0 && currentResults != null) {
-                    mapPanel.setSelectedRoute(currentResults.get(selectedRow));
+                if (selectedRow >= 0) {
+                    mapPanel.setSelectedRoute(tableModel.getItinerary(selectedRow).getLegs());
                 }
             }
         });
@@ -109,6 +106,9 @@ public class RouteFinderGUI extends JFrame {
         buttonPanel.add(findRoutesButton);
         buttonPanel.add(sortByCostButton);
         buttonPanel.add(sortByDurationButton);
+        buttonPanel.add(showNetworkButton);
+        buttonPanel.add(showHubButton);
+        buttonPanel.add(excludeSmallAircraftBox);
 
         // Add panels to frame
         add(topPanel, BorderLayout.NORTH);
@@ -119,6 +119,19 @@ public class RouteFinderGUI extends JFrame {
         findRoutesButton.addActionListener(e -> findRoutes());
         sortByCostButton.addActionListener(e -> sortResults(RouteCriteria.COST));
         sortByDurationButton.addActionListener(e -> sortResults(RouteCriteria.DURATION));
+        showNetworkButton.addActionListener(e -> {
+            showHubButton.setSelected(false);
+            updateNetworkOverlay();
+        });
+        showHubButton.addActionListener(e -> {
+            showNetworkButton.setSelected(false);
+            updateNetworkOverlay();
+        });
+        originAirportCombo.addActionListener(e -> {
+            if (showHubButton.isSelected()) {
+                updateNetworkOverlay();
+            }
+        });
 
         // Set frame properties
         setSize(1200, 800);
@@ -139,140 +152,57 @@ public class RouteFinderGUI extends JFrame {
         }
 
         // Convert spinner time to OffsetDateTime
-        departureTime = OffsetDateTime.now()
+        OffsetDateTime departureTime = OffsetDateTime.now()
                 .withHour(((java.util.Date) timeSpinner.getValue()).getHours())
                 .withMinute(((java.util.Date) timeSpinner.getValue()).getMinutes())
                 .withSecond(0)
                 .withNano(0);
 
-        currentResults = RouteFinder.findRoutes(
-                dataGenerator.getRoutes(),
+        LegFilter filter = excludeSmallAircraftBox.isSelected()
+                ? LegFilter.NONE.excludingSmallAircraft()
+                : LegFilter.NONE;
+
+        List<Itinerary> results = routeFinder.findRoutes(
                 origin,
                 destination,
                 criteria,
-                departureTime
+                departureTime,
+                filter
         );
 
-        displayResults(currentResults);
+        displayResults(results);
     }
 
     private void sortResults(RouteCriteria criteria) {
-        if (currentResults == null || currentResults.isEmpty()) {
+        if (tableModel.getRowCount() == 0) {
             return;
         }
 
-        if (criteria == RouteCriteria.COST) {
-            currentResults.sort((r1, r2) -> Double.compare(
-                    calculateTotalCost(r1),
-                    calculateTotalCost(r2)
-            ));
+        tableModel.sortBy(criteria);
+    }
+
+    private void updateNetworkOverlay() {
+        if (showNetworkButton.isSelected()) {
+            mapPanel.setNetworkRoutes(dataGenerator.getRoutes());
+        } else if (showHubButton.isSelected()) {
+            // All legs departing from the selected origin airport
+            mapPanel.setNetworkRoutes(dataGenerator.getRoutes(), (Airport) originAirportCombo.getSelectedItem());
         } else {
-            currentResults.sort((r1, r2) -> calculateTotalDuration(r1).compareTo(
-                    calculateTotalDuration(r2)
-            ));
+            mapPanel.setNetworkRoutes(null);
         }
-
-        displayResults(currentResults);
     }
 
-    private void displayResults(List<List<Route>> routes) {
-        tableModel.setRowCount(0);
+    private void displayResults(List<Itinerary> routes) {
+        tableModel.setResults(routes);
 
         if (routes == null || routes.isEmpty()) {
             JOptionPane.showMessageDialog(this,
                     "No routes found!",
                     "Search Results",
                     JOptionPane.INFORMATION_MESSAGE);
-            return;
-        }
-
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm");
-
-        for (List<Route> route : routes) {
-            Vector<Object> row = new Vector<>();
-
-            // Format route description
-            StringBuilder routeDesc = new StringBuilder("<html>");
-            for (int i = 0; i < route.size(); i++) {
-                Route segment = route.get(i);
-                routeDesc.append(segment.getOrigin().getCode())
-                        .append(" (")
-                        .append(segment.getDepartureTime().format(timeFormatter))
-                        .append(") → ")
-                        .append(segment.getDestination().getCode())
-                        .append(" (")
-                        .append(segment.getArrivalTime().format(timeFormatter))
-                        .append(")")
-                        .append("<br>")
-                        .append("Flight duration: ")
-                        .append(formatDuration(segment.getDuration()))
-                        .append("<br>")
-                        .append("Plane type: ")
-                        .append(segment.getPlaneType())
-                        .append("<br>")
-                        .append("Cost: ")
-                        .append(String.format("%.2f", segment.getCost()));
-
-                if (i < route.size() - 1) {
-                    Duration layover = calculateLayover(segment, route.get(i + 1));
-                    routeDesc.append("<br>Layover: ")
-                            .append(formatDuration(layover))
-                            .append("<br>---<br>");
-                }
-            }
-            routeDesc.append("</html>");
-
-            row.add(routeDesc.toString());
-            row.add(String.format("%.2f", calculateTotalCost(route)));
-            row.add(formatDuration(calculateTotalDuration(route)));
-            row.add(route.size() - 1);
-
-            tableModel.addRow(row);
         }
     }
 
-    private double calculateTotalCost(List<Route> route) {
-        return route.stream().mapToDouble(Route::getCost).sum();
-    }
-
-    private Duration calculateTotalDuration(List<Route> route) {
-        Duration total = Duration.ZERO;
-
-        // Add waiting for first flight
-        Route first = route.get(0);
-        Duration waiting = Duration.between(departureTime.toOffsetTime(), first.getDepartureTime());
-        if (waiting.isNegative()) {
-            waiting = waiting.plus(Duration.ofHours(24));
-        }
-        total = total.plus(waiting);
-
-        // Add flight durations
-        for (Route r : route) {
-            total = total.plus(r.getDuration());
-        }
-
-        // Add layover times
-        for (int i = 0; i < route.size() - 1; i++) {
-            total = total.plus(calculateLayover(route.get(i), route.get(i + 1)));
-        }
-
-        return total;
-    }
-
-    private Duration calculateLayover(Route first, Route second) {
-        Duration layover = Duration.between(first.getArrivalTime(), second.getDepartureTime());
-        if (layover.isNegative()) {
-            layover = layover.plus(Duration.ofHours(24));
-        }
-        return layover;
-    }
-
-    private String formatDuration(Duration duration) {
-        long hours = duration.toHours();
-        long minutes = duration.toMinutesPart();
-        return String.format("%dh %dm", hours, minutes);
-    }
-
     private static class MultiLineCellRenderer extends DefaultTableCellRenderer {
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value,
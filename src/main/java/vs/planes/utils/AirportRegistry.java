@@ -0,0 +1,52 @@
+package vs.planes.utils;
+
+import vs.planes.model.Airport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns airports to dense int ids (0, 1, 2, ...) so hot code can index arrays
+ * instead of hashing {@link Airport} objects. Filled at load time, read-only afterwards.
+ * <p>
+ * Routes share the airport instances they were generated from, so lookups first try the
+ * instance itself and only fall back to {@link Airport#equals} for copies.
+ */
+public class AirportRegistry {
+    private final List<Airport> airports = new ArrayList<>();
+    private final Map<Airport, Integer> ids = new HashMap<>();
+    private final Map<Airport, Integer> idsByInstance = new IdentityHashMap<>();
+
+    /**
+     * @return The id of the airport, registering it first if it is new
+     */
+    public int intern(Airport airport) {
+        int id = idOf(airport);
+        if (id < 0) {
+            id = airports.size();
+            airports.add(airport);
+            ids.put(airport, id);
+        }
+        idsByInstance.put(airport, id);
+        return id;
+    }
+
+    /**
+     * @return The id of the airport, or -1 if it was never registered
+     */
+    public int idOf(Airport airport) {
+        Integer id = idsByInstance.get(airport);
+        return id != null ? id : ids.getOrDefault(airport, -1);
+    }
+
+    public Airport get(int id) {
+        return airports.get(id);
+    }
+
+    public int size() {
+        return airports.size();
+    }
+}
@@ -19,6 +19,8 @@ public class DataGenerator {
     private static final List<Airport> airports = new ArrayList<>();
     @Getter
     private static final List<Route> routes = new ArrayList<>();
+    @Getter
+    private static final AirportRegistry airportRegistry = new AirportRegistry();
 
     public DataGenerator() {
         generateAirports();
@@ -52,13 +54,19 @@ public class DataGenerator {
                     distance
             );
 
+            // Most flights are daily, the rest operate on a random non-empty set of weekdays
+            int operatingDays = Math.random() < 0.6
+                    ? Route.EVERY_DAY
+                    : 1 + (int) (Math.random() * Route.EVERY_DAY);
+
             routes.add(new Route(
                     origin,
                     destination,
                     distance,
                     departureTime,
                     arrivalTime,
-                    PlaneType.values()[(int) (Math.random() * PlaneType.values().length)]
+                    PlaneType.values()[(int) (Math.random() * PlaneType.values().length)],
+                    operatingDays
             ));
         }
     }
@@ -116,5 +124,8 @@ public class DataGenerator {
         airports.add(new Airport("EZE", "Buenos Aires Ezeiza", -34.8220, -58.5358));
         airports.add(new Airport("AEP", "Buenos Aires Aeroparque", -34.5592, -58.4156));
         airports.add(new Airport("SCL", "Santiago Comodoro Arturo Merino Benítez", -33.3930, -70.7858));
+
+        // Intern in list order, so an airport's id is also its index in the list
+        airports.forEach(airportRegistry::intern);
     }
 }
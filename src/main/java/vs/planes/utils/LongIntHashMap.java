@@ -0,0 +1,101 @@
+package vs.planes.utils;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from long keys to int values, so hot loops don't box a key per lookup.
+ * The key {@link #EMPTY_KEY} is reserved.
+ */
+public class LongIntHashMap {
+    public static final long EMPTY_KEY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntHashMap() {
+        this(16);
+    }
+
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+    }
+
+    public int get(long key, int defaultValue) {
+        int slot = find(keys, key);
+        return keys[slot] == EMPTY_KEY ? defaultValue : values[slot];
+    }
+
+    public void put(long key, int value) {
+        int slot = insert(key);
+        values[slot] = value;
+    }
+
+    /**
+     * Adds to the value of the key, treating a missing key as 0
+     */
+    public void addTo(long key, int delta) {
+        int slot = insert(key);
+        values[slot] += delta;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(EntryConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != EMPTY_KEY) {
+                consumer.accept(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    private int insert(long key) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Reserved key " + key);
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+        }
+        int slot = find(keys, key);
+        if (keys[slot] == EMPTY_KEY) {
+            keys[slot] = key;
+            values[slot] = 0;
+            size++;
+        }
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY_KEY);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int slot = find(keys, oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int find(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    public interface EntryConsumer {
+        void accept(long key, int value);
+    }
+}
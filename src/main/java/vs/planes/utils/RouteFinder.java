@@ -1,71 +1,218 @@
 package vs.planes.utils;
 
 import vs.planes.model.Airport;
+import vs.planes.model.Itinerary;
+import vs.planes.model.LegFilter;
 import vs.planes.model.Route;
 import vs.planes.model.RouteCriteria;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.time.OffsetDateTime;
-import java.time.OffsetTime;
 import java.util.*;
 
+/**
+ * Searches a weekly schedule. Every leg is stored once with its local departure time and
+ * operating days, and the search works on absolute minutes, so itineraries may wait for a
+ * leg that only flies on a later day and may span any number of days.
+ * <p>
+ * Airports are interned to dense ids and legs are grouped by origin airport, so the search
+ * only compares ints and walks contiguous array ranges instead of hashing objects.
+ * <p>
+ * A {@link LegFilter} is evaluated against per-leg primitives during the search. Legs of an
+ * airport are ordered by cost and every airport keeps the plane types and shortest duration of
+ * its legs, so a filter cuts an adjacency range short or skips it without touching its legs.
+ */
 public class RouteFinder {
     private static final int MAX_ROUTES = 10;
     private static final int MAX_TRANSFERS = 3;  // Maximum number of transfers allowed
     private static final Duration MIN_TRANSFER_TIME = Duration.ofMinutes(30);
     private static final Duration MAX_TRANSFER_TIME = Duration.ofHours(4);
+    private static final long MIN_TRANSFER_MINUTES = MIN_TRANSFER_TIME.toMinutes();
+    private static final long MAX_TRANSFER_MINUTES = MAX_TRANSFER_TIME.toMinutes();
+    private static final int MINUTES_PER_DAY = 24 * 60;
 
-    public static List<List<Route>> findRoutes(
+    private final AirportRegistry airports;
+
+    // Legs of airport a are numbered firstLeg[a] until firstLeg[a + 1] in order of cost,
+    // built once and only read afterwards
+    private final int[] firstLeg;
+    private final int[] airportPlaneTypes;     // Union of the plane type bits of the airport's legs
+    private final int[] airportMinDuration;
+
+    // Schedule of every leg, indexed by leg number
+    private final Route[] legs;
+    private final int[] originId;
+    private final int[] destinationId;
+    private final double[] legCost;
+    private final int[] planeTypeBit;
+    private final int[] departureMinuteOfDay;  // In the leg's own offset
+    private final int[] offsetMinutes;
+    private final int[] durationMinutes;
+    private final int[] operatingDays;
+
+    /**
+     * Indexes the network once so that any number of queries, from any thread, can reuse it
+     * @param routes All available routes
+     */
+    public RouteFinder(List<Route> routes) {
+        this(new AirportRegistry(), routes);
+    }
+
+    /**
+     * @param airports Registry to intern the airports of the routes into
+     * @param routes All available routes
+     */
+    public RouteFinder(AirportRegistry airports, List<Route> routes) {
+        this.airports = airports;
+        int size = routes.size();
+
+        // Counting sort of the legs by origin airport id
+        int[] routeOrigin = new int[size];
+        int[] routeDestination = new int[size];
+        double[] routeCost = new double[size];
+        for (int i = 0; i < size; i++) {
+            routeOrigin[i] = airports.intern(routes.get(i).getOrigin());
+            routeDestination[i] = airports.intern(routes.get(i).getDestination());
+            routeCost[i] = routes.get(i).getCost();
+        }
+        firstLeg = new int[airports.size() + 1];
+        for (int origin : routeOrigin) {
+            firstLeg[origin + 1]++;
+        }
+        for (int a = 0; a < airports.size(); a++) {
+            firstLeg[a + 1] += firstLeg[a];
+        }
+        int[] order = new int[size];
+        int[] next = Arrays.copyOf(firstLeg, airports.size());
+        for (int i = 0; i < size; i++) {
+            order[next[routeOrigin[i]]++] = i;
+        }
+
+        // Order every block by cost, packing the cost's rank with the route index to sort primitives
+        double[] sortedCosts = routeCost.clone();
+        Arrays.sort(sortedCosts);
+        long[] keys = new long[size];
+        for (int leg = 0; leg < size; leg++) {
+            keys[leg] = ((long) Arrays.binarySearch(sortedCosts, routeCost[order[leg]]) << 32) | order[leg];
+        }
+        for (int a = 0; a < airports.size(); a++) {
+            Arrays.sort(keys, firstLeg[a], firstLeg[a + 1]);
+        }
+        for (int leg = 0; leg < size; leg++) {
+            order[leg] = (int) keys[leg];
+        }
+
+        legs = new Route[size];
+        originId = new int[size];
+        destinationId = new int[size];
+        legCost = new double[size];
+        planeTypeBit = new int[size];
+        departureMinuteOfDay = new int[size];
+        offsetMinutes = new int[size];
+        durationMinutes = new int[size];
+        operatingDays = new int[size];
+
+        airportPlaneTypes = new int[airports.size()];
+        airportMinDuration = new int[airports.size()];
+        Arrays.fill(airportMinDuration, Integer.MAX_VALUE);
+
+        for (int leg = 0; leg < size; leg++) {
+            int i = order[leg];
+            Route route = routes.get(i);
+            legs[leg] = route;
+            originId[leg] = routeOrigin[i];
+            destinationId[leg] = routeDestination[i];
+            legCost[leg] = routeCost[i];
+            planeTypeBit[leg] = route.getPlaneType().bit();
+            departureMinuteOfDay[leg] = route.getDepartureTime().getHour() * 60 + route.getDepartureTime().getMinute();
+            offsetMinutes[leg] = route.getDepartureTime().getOffset().getTotalSeconds() / 60;
+            durationMinutes[leg] = (int) route.getDuration().toMinutes();
+            operatingDays[leg] = route.getOperatingDays() & Route.EVERY_DAY;
+
+            airportPlaneTypes[originId[leg]] |= planeTypeBit[leg];
+            airportMinDuration[originId[leg]] = Math.min(airportMinDuration[originId[leg]], durationMinutes[leg]);
+        }
+    }
+
+    public static List<Itinerary> findRoutes(
             List<Route> routes,
             Airport origin,
             Airport destination,
             RouteCriteria criteria,
             OffsetDateTime departureTime) {
+        return new RouteFinder(routes).findRoutes(origin, destination, criteria, departureTime);
+    }
 
-        // Create adjacency list for faster route lookup
-        Map<Airport, List<Route>> routeMap = new HashMap<>();
-        for (Route route : routes) {
-            routeMap.computeIfAbsent(route.getOrigin(), k -> new ArrayList<>()).add(route);
+    public List<Itinerary> findRoutes(
+            Airport origin,
+            Airport destination,
+            RouteCriteria criteria,
+            OffsetDateTime departureTime) {
+        return findRoutes(origin, destination, criteria, departureTime, LegFilter.NONE);
+    }
+
+    public List<Itinerary> findRoutes(
+            Airport origin,
+            Airport destination,
+            RouteCriteria criteria,
+            OffsetDateTime departureTime,
+            LegFilter filter) {
+
+        if (criteria == RouteCriteria.PARETO) {
+            return findParetoRoutes(origin, destination, departureTime, filter);
+        }
+
+        int originAirport = airports.idOf(origin);
+        int destinationAirport = airports.idOf(destination);
+        if (originAirport < 0 || destinationAirport < 0 || originAirport >= firstLeg.length - 1) {
+            return new ArrayList<>();
         }
+        long start = toEpochMinute(departureTime);
 
         // Priority queue to store partial paths
-        PriorityQueue<PartialPath> queue = new PriorityQueue<>((p1, p2) -> {
+        PriorityQueue<Label> queue = new PriorityQueue<>((p1, p2) -> {
             if (criteria == RouteCriteria.COST) {
-                return Double.compare(p1.totalCost, p2.totalCost);
+                return Double.compare(p1.cost, p2.cost);
             } else {
-                return p1.totalDuration.compareTo(p2.totalDuration);
+                return Long.compare(p1.arrival, p2.arrival);
             }
         });
 
-        // Initialize with routes from origin
-        List<Route> initialRoutes = routeMap.getOrDefault(origin, Collections.emptyList());
-        for (Route route : initialRoutes) {
-            queue.offer(new PartialPath(Collections.singletonList(route), departureTime.toOffsetTime()));
-
+        // Initialize with the next departure of every route from origin
+        for (int leg = firstLeg[originAirport], end = blockEnd(originAirport, filter); leg < end; leg++) {
+            if (!accepts(leg, filter)) {
+                continue;
+            }
+            long departure = nextDeparture(leg, start);
+            if (departure >= 0) {
+                queue.offer(new Label(leg, null, departure, departure + durationMinutes[leg], legCost[leg]));
+            }
         }
 
         // Store found complete paths
-        List<List<Route>> completePaths = new ArrayList<>();
+        List<Itinerary> completePaths = new ArrayList<>();
 
         // Process queue
         while (!queue.isEmpty() && completePaths.size() < MAX_ROUTES) {
-            PartialPath currentPath = queue.poll();
-            Route lastRoute = currentPath.routes.get(currentPath.routes.size() - 1);
+            Label current = queue.poll();
+            int airport = destinationId[current.leg];
 
             // If we reached destination, add to complete paths
-            if (lastRoute.getDestination().equals(destination)) {
-                completePaths.add(new ArrayList<>(currentPath.routes));
+            if (airport == destinationAirport) {
+                completePaths.add(toItinerary(current, departureTime));
                 continue;
             }
 
             // If we haven't reached max transfers, explore more routes
-            if (currentPath.routes.size() < MAX_TRANSFERS + 1) {
-                List<Route> nextRoutes = routeMap.getOrDefault(lastRoute.getDestination(), Collections.emptyList());
-                for (Route nextRoute : nextRoutes) {
-                    if (isValidConnection(lastRoute, nextRoute)) {
-                        List<Route> newRoutes = new ArrayList<>(currentPath.routes);
-                        newRoutes.add(nextRoute);
-                        queue.offer(new PartialPath(newRoutes, departureTime.toOffsetTime()));
+            if (current.transfers < MAX_TRANSFERS) {
+                for (int nextLeg = firstLeg[airport], end = blockEnd(airport, filter); nextLeg < end; nextLeg++) {
+                    if (!accepts(nextLeg, filter)) {
+                        continue;
+                    }
+                    Label next = connect(current, nextLeg);
+                    if (next != null) {
+                        queue.offer(next);
                     }
                 }
             }
@@ -74,68 +221,273 @@ public class RouteFinder {
         return completePaths;
     }
 
-    private static boolean isValidConnection(Route first, Route second) {
-        // Prevent cycles
-        if (second.getDestination().equals(first.getOrigin())) {
-            return false;
+    public List<Itinerary> findParetoRoutes(
+            Airport origin,
+            Airport destination,
+            OffsetDateTime departureTime) {
+        return findParetoRoutes(origin, destination, departureTime, LegFilter.NONE);
+    }
+
+    /**
+     * Finds every itinerary that is Pareto-optimal over total cost, total duration and
+     * number of transfers, i.e. no other itinerary is at least as good in all three.
+     * <p>
+     * The search runs in rounds, round k extending the labels of round k - 1 by one leg.
+     * Labels are kept in a bag per flown leg, i.e. per leg and departure date: two labels on
+     * the same flight have exactly the same onward connections, so one that is no better in
+     * any criterion can be dropped. Labels already dominated by a complete itinerary are
+     * dropped as well, since extending a path never decreases any of the criteria.
+     * @return The Pareto front, ordered by total cost
+     */
+    public List<Itinerary> findParetoRoutes(
+            Airport origin,
+            Airport destination,
+            OffsetDateTime departureTime,
+            LegFilter filter) {
+
+        int originAirport = airports.idOf(origin);
+        int destinationAirport = airports.idOf(destination);
+        if (originAirport < 0 || destinationAirport < 0 || originAirport >= firstLeg.length - 1) {
+            return new ArrayList<>();
         }
+        long start = toEpochMinute(departureTime);
+        ParetoSearch search = new ParetoSearch(destinationAirport);
 
-        // Check if transfer time is within acceptable range
-        Duration transferTime = Duration.between(first.getArrivalTime(), second.getDepartureTime());
-        if (transferTime.isNegative()) {
-            // If negative, it means the flight is on the next day
-            transferTime = transferTime.plus(Duration.ofHours(24));
+        // Round 1: every departure out of the origin during the next week, since a later
+        // first flight may be the only one that connects to an onward leg
+        List<Label> marked = new ArrayList<>();
+        long horizon = start + 7L * MINUTES_PER_DAY;
+        for (int leg = firstLeg[originAirport], end = blockEnd(originAirport, filter); leg < end; leg++) {
+            if (!accepts(leg, filter)) {
+                continue;
+            }
+            for (long departure = nextDeparture(leg, start);
+                 departure >= 0 && departure < horizon;
+                 departure = nextDeparture(leg, departure + 1)) {
+                search.relax(new Label(leg, null, departure, departure + durationMinutes[leg], legCost[leg]), marked);
+            }
         }
 
-        return transferTime.compareTo(MIN_TRANSFER_TIME) >= 0 &&
-                transferTime.compareTo(MAX_TRANSFER_TIME) <= 0;
+        // Following rounds: extend only the labels that improved a bag in the previous round
+        for (int round = 1; round <= MAX_TRANSFERS && !marked.isEmpty(); round++) {
+            List<Label> previous = marked;
+            marked = new ArrayList<>();
+            for (Label label : previous) {
+                if (label.dominated) {
+                    continue;
+                }
+                int airport = destinationId[label.leg];
+                for (int nextLeg = firstLeg[airport], end = blockEnd(airport, filter); nextLeg < end; nextLeg++) {
+                    if (!accepts(nextLeg, filter)) {
+                        continue;
+                    }
+                    Label next = connect(label, nextLeg);
+                    if (next != null) {
+                        search.relax(next, marked);
+                    }
+                }
+            }
+        }
+
+        List<Label> targetBag = search.targetBag;
+        targetBag.sort(Comparator.<Label>comparingDouble(l -> l.cost).thenComparingLong(l -> l.arrival));
+        List<Itinerary> front = new ArrayList<>(targetBag.size());
+        for (Label label : targetBag) {
+            front.add(toItinerary(label, departureTime));
+        }
+        return front;
     }
 
-    private static class PartialPath {
-        final OffsetTime departureTime;
-        final List<Route> routes;
-        final double totalCost;
-        final Duration totalDuration;
+    /**
+     * Bags of one Pareto query. Flights are keyed by departure minute and leg number in a
+     * primitive map pointing into a list of bags, so no key is boxed per relaxation.
+     */
+    private class ParetoSearch {
+        final int destinationAirport;
+        final LongIntHashMap bagIndex = new LongIntHashMap(1024);
+        final List<List<Label>> bags = new ArrayList<>();
+        final List<Label> targetBag = new ArrayList<>();
 
-        PartialPath(List<Route> routes, OffsetTime departureTime) {
-            this.departureTime = departureTime;
-            this.routes = routes;
-            this.totalCost = calculateTotalCost();
-            this.totalDuration = calculateTotalDuration();
+        ParetoSearch(int destinationAirport) {
+            this.destinationAirport = destinationAirport;
         }
 
-        private double calculateTotalCost() {
-            return routes.stream().mapToDouble(Route::getCost).sum();
-        }
+        void relax(Label label, List<Label> marked) {
+            // Target pruning: a complete itinerary is already at least as good in every criterion
+            for (Label complete : targetBag) {
+                if (complete.dominates(label)) {
+                    return;
+                }
+            }
 
-        private Duration calculateTotalDuration() {
-            Duration duration = Duration.ZERO;
+            if (destinationId[label.leg] == destinationAirport) {
+                addToBag(targetBag, label);
+                return;
+            }
 
-            // Add waiting for the first flight
-            Route firstRoute = routes.get(0);
-            Duration waitingTime = Duration.between(departureTime, firstRoute.getDepartureTime());
-            if (waitingTime.isNegative()) {
-                waitingTime = waitingTime.plus(Duration.ofHours(24));
+            long flight = label.departure * legs.length + label.leg;
+            int index = bagIndex.get(flight, -1);
+            if (index < 0) {
+                index = bags.size();
+                bags.add(new ArrayList<>(2));
+                bagIndex.put(flight, index);
+            }
+            if (addToBag(bags.get(index), label)) {
+                marked.add(label);
             }
-            duration = duration.plus(waitingTime);
+        }
+    }
 
-            // Add flight durations
-            for (Route route : routes) {
-                duration = duration.plus(route.getDuration());
+    /**
+     * Inserts the label unless the bag already dominates it, evicting labels it dominates
+     * @return Whether the label was inserted
+     */
+    private static boolean addToBag(List<Label> bag, Label label) {
+        for (Label existing : bag) {
+            if (existing.dominates(label)) {
+                return false;
+            }
+        }
+        bag.removeIf(existing -> {
+            if (label.dominates(existing)) {
+                existing.dominated = true;
+                return true;
             }
+            return false;
+        });
+        bag.add(label);
+        return true;
+    }
 
-            // Add transfer times
-            for (int i = 0; i < routes.size() - 1; i++) {
-                Route current = routes.get(i);
-                Route next = routes.get(i + 1);
-                Duration transferTime = Duration.between(current.getArrivalTime(), next.getDepartureTime());
-                if (transferTime.isNegative()) {
-                    transferTime = transferTime.plus(Duration.ofHours(24));
-                }
-                duration = duration.plus(transferTime);
+    /**
+     * Finds where the legs of an airport that may pass the filter end. Legs are ordered by
+     * cost, so the cost limit cuts the range short, and an airport without any leg of an
+     * allowed plane type or short enough is skipped entirely.
+     * @return End of the range starting at firstLeg[airport], equal to its start when skipped
+     */
+    private int blockEnd(int airport, LegFilter filter) {
+        int start = firstLeg[airport];
+        int end = firstLeg[airport + 1];
+        if ((airportPlaneTypes[airport] & filter.getAllowedPlaneTypes()) == 0
+                || airportMinDuration[airport] > filter.getMaxLegMinutes()) {
+            return start;
+        }
+        if (end == start || legCost[end - 1] <= filter.getMaxLegCost()) {
+            return end;
+        }
+
+        // Binary search for the first leg above the cost limit
+        int low = start;
+        int high = end - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (legCost[middle] <= filter.getMaxLegCost()) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
+        }
+        return low;
+    }
+
+    private boolean accepts(int leg, LegFilter filter) {
+        return (planeTypeBit[leg] & filter.getAllowedPlaneTypes()) != 0
+                && durationMinutes[leg] <= filter.getMaxLegMinutes();
+    }
+
+    /**
+     * Extends a path with the first departure of the given leg that makes a valid connection
+     * @return The extended path, or null if the leg can't be connected to
+     */
+    private Label connect(Label current, int nextLeg) {
+        // Prevent cycles
+        if (destinationId[nextLeg] == originId[current.leg]) {
+            return null;
+        }
+
+        // Check if transfer time is within acceptable range
+        long departure = nextDeparture(nextLeg, current.arrival + MIN_TRANSFER_MINUTES);
+        if (departure < 0 || departure - current.arrival > MAX_TRANSFER_MINUTES) {
+            return null;
+        }
+
+        return new Label(nextLeg, current, departure, departure + durationMinutes[nextLeg],
+                current.cost + legCost[nextLeg]);
+    }
+
+    /**
+     * Finds the first departure of a leg at or after the given time, looking up to a week ahead
+     * @param earliest Epoch minute
+     * @return Epoch minute of the departure, or -1 if the leg never operates
+     */
+    private long nextDeparture(int leg, long earliest) {
+        int days = operatingDays[leg];
+        if (days == 0) {
+            return -1;
+        }
+
+        // Work in the leg's local time, where its departure time and operating days are defined
+        long local = earliest + offsetMinutes[leg];
+        long day = Math.floorDiv(local, MINUTES_PER_DAY);
+        long candidate = day * MINUTES_PER_DAY + departureMinuteOfDay[leg];
+        if (candidate < local) {
+            candidate += MINUTES_PER_DAY;
+            day++;
+        }
+
+        // Epoch day 0 was a Thursday, bit 0 is Monday; rotate so bit 0 is the candidate's day
+        int dayOfWeek = Math.floorMod(day + 3, 7);
+        int rotated = ((days >>> dayOfWeek) | (days << (7 - dayOfWeek))) & Route.EVERY_DAY;
+        int daysToWait = Integer.numberOfTrailingZeros(rotated);
+
+        return candidate + (long) daysToWait * MINUTES_PER_DAY - offsetMinutes[leg];
+    }
+
+    private Itinerary toItinerary(Label last, OffsetDateTime readyTime) {
+        LinkedList<Route> routes = new LinkedList<>();
+        LinkedList<OffsetDateTime> departures = new LinkedList<>();
+        for (Label label = last; label != null; label = label.parent) {
+            Route route = legs[label.leg];
+            routes.addFirst(route);
+            departures.addFirst(Instant.ofEpochSecond(label.departure * 60)
+                    .atOffset(route.getDepartureTime().getOffset()));
+        }
+        return new Itinerary(readyTime, new ArrayList<>(routes), new ArrayList<>(departures));
+    }
+
+    private static long toEpochMinute(OffsetDateTime time) {
+        // Round up, a flight leaving before the traveller is ready can't be caught
+        return Math.floorDiv(time.toEpochSecond() + 59, 60);
+    }
+
+    /**
+     * Search state: a path ending with one flown leg, linked to the path it extends
+     */
+    private static class Label {
+        final int leg;
+        final Label parent;
+        final long departure;  // Epoch minute
+        final long arrival;    // Epoch minute
+        final double cost;
+        final int transfers;
+        boolean dominated;
+
+        Label(int leg, Label parent, long departure, long arrival, double cost) {
+            this.leg = leg;
+            this.parent = parent;
+            this.departure = departure;
+            this.arrival = arrival;
+            this.cost = cost;
+            this.transfers = parent == null ? 0 : parent.transfers + 1;
+        }
 
-            return duration;
+        /**
+         * All labels of one search share the start time, so the arrival orders total duration
+         */
+        boolean dominates(Label other) {
+            return cost <= other.cost
+                    && arrival <= other.arrival
+                    && transfers <= other.transfers;
         }
     }
-}
\ No newline at end of file
+}